@@ -0,0 +1,148 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures whatever the thread dispatching an event has in scope, once per
+ * event, so that every Acteur the event runs - on whatever thread - can still
+ * inject it.  Uses the scope's own wrapped thread pool to take the snapshot,
+ * with an executor which keeps the wrapped callable instead of running it.
+ *
+ * @author Tim Boudreau
+ */
+final class CallerScope {
+
+    private static final ThreadLocal<Callable<?>> CAPTURED = new ThreadLocal<>();
+    private static final ThreadLocal<Callable<?>> BODY = new ThreadLocal<>();
+    private static final Callable<Object> TRAMPOLINE = new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+            return BODY.get().call();
+        }
+    };
+    private final ExecutorService capture;
+
+    CallerScope(ReentrantScope scope) {
+        this.capture = scope.wrapThreadPool(new Captor());
+    }
+
+    /**
+     * Snapshot the calling thread's scope contents
+     *
+     * @return A callable which may be passed to <code>call()</code> any
+     * number of times, on any thread
+     */
+    Callable<?> snapshot() {
+        capture.submit(TRAMPOLINE);
+        Callable<?> result = CAPTURED.get();
+        CAPTURED.remove();
+        if (result == null) {
+            throw new IllegalStateException("Scope did not wrap " + TRAMPOLINE);
+        }
+        return result;
+    }
+
+    /**
+     * Run some code with the contents of a snapshot in scope
+     *
+     * @param snapshot A snapshot
+     * @param body The code to run
+     * @return Whatever the body returns
+     * @throws Exception If the body throws
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T call(Callable<?> snapshot, Callable<T> body) throws Exception {
+        Callable<?> old = BODY.get();
+        BODY.set(body);
+        try {
+            return (T) snapshot.call();
+        } finally {
+            if (old == null) {
+                BODY.remove();
+            } else {
+                BODY.set(old);
+            }
+        }
+    }
+
+    private static final class Captor extends AbstractExecutorService {
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            CAPTURED.set(task);
+            return new FutureTask<>(task);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return submit(Executors.callable(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return submit(Executors.callable(task, result));
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            CAPTURED.set(Executors.callable(command));
+        }
+
+        @Override
+        public void shutdown() {
+            // do nothing
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package com.mastfrog.acteurpattern;
 
 import com.google.inject.Injector;
+import com.mastfrog.guicy.scope.ReentrantScope;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -48,6 +49,27 @@ public final class Chain implements Iterable<Acteur> {
         this.injector = injector;
     }
 
+    /**
+     * Work out the dependencies between the Acteurs in this chain, from
+     * what they inject and what they declare as their {@link Outputs}.
+     *
+     * @param scope The scope the chain's Acteurs are injected from
+     * @param eventTypes The types of the objects which will be in scope when
+     * an event is dispatched to the chain
+     * @return An analysis of the chain
+     */
+    public ChainAnalysis analyze(ReentrantScope scope, Class<?>... eventTypes) {
+        return new ChainAnalysis(this, injector, scope, eventTypes);
+    }
+
+    Injector injector() {
+        return injector;
+    }
+
+    Acteur create(Class<? extends Acteur> type) {
+        return injector.getInstance(type);
+    }
+
     @Override
     public Iterator<Acteur> iterator() {
         return new It(acteurTypes.iterator(), injector);
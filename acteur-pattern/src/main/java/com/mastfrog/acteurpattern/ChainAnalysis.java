@@ -0,0 +1,284 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.google.inject.Binding;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Scope;
+import com.google.inject.spi.DefaultBindingScopingVisitor;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.InjectionPoint;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dataflow graph of a Chain.  An Acteur depends on an earlier one if it
+ * injects a type the earlier one declares in its {@link Outputs}.  Consecutive
+ * Acteurs which do not depend on each other are grouped into the same level -
+ * each level only depends on the levels before it, so the Acteurs in a level
+ * can be run concurrently.  Levels follow chain order:  no Acteur is in an
+ * earlier level than one before it.  An Acteur whose State may be done is
+ * always the last in its level.
+ *
+ * @author Tim Boudreau
+ */
+public final class ChainAnalysis {
+
+    private final List<Class<? extends Acteur>> types;
+    private final List<List<Integer>> levels = new ArrayList<>();
+    private final List<Class<? extends Acteur>> unused = new ArrayList<>();
+    private final List<String> unsatisfied = new ArrayList<>();
+
+    ChainAnalysis(Chain chain, Injector injector, ReentrantScope scope, Class<?>... eventTypes) {
+        this.types = new ArrayList<>(chain.acteurTypes);
+        int size = types.size();
+        Class<?>[][] outputs = new Class<?>[size][];
+        boolean[] mayFinish = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            Outputs out = types.get(i).getAnnotation(Outputs.class);
+            // null means the Acteur could put anything in its State
+            outputs[i] = out == null ? null : out.value();
+            mayFinish[i] = out == null || out.mayFinish();
+        }
+        BitSet[] dependsOn = new BitSet[size];
+        BitSet[] consumed = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            dependsOn[i] = new BitSet(size);
+            consumed[i] = new BitSet();
+        }
+        for (int i = 0; i < size; i++) {
+            Class<? extends Acteur> type = types.get(i);
+            for (int j = 0; j < i; j++) {
+                // Anything after an unannotated Acteur may need what it
+                // produces, and an unannotated Acteur stays behind everything
+                // before it.  Nothing may run before we know whether an
+                // earlier Acteur's state is done.
+                if (outputs[j] == null || outputs[i] == null || mayFinish[j]) {
+                    dependsOn[i].set(j);
+                }
+            }
+            Set<Class<?>> needs;
+            try {
+                needs = dependencies(type);
+            } catch (ConfigurationException e) {
+                unsatisfied.add(type.getName() + " cannot be injected: " + e.getMessage());
+                needs = Collections.emptySet();
+            }
+            for (Class<?> needed : needs) {
+                boolean found = false;
+                for (int j = 0; j < i; j++) {
+                    if (outputs[j] == null) {
+                        found = true;
+                        continue;
+                    }
+                    for (int k = 0; k < outputs[j].length; k++) {
+                        if (needed.isAssignableFrom(outputs[j][k])) {
+                            dependsOn[i].set(j);
+                            consumed[j].set(k);
+                            found = true;
+                        }
+                    }
+                }
+                if (found || isAssignableFromAny(needed, eventTypes)) {
+                    continue;
+                }
+                String laterProducer = null;
+                for (int j = i + 1; j < size && laterProducer == null; j++) {
+                    if (outputs[j] != null && isAssignableFromAny(needed, outputs[j])) {
+                        laterProducer = types.get(j).getName();
+                    }
+                }
+                if (laterProducer != null) {
+                    unsatisfied.add(type.getName() + " needs " + needed.getName()
+                            + " which is only provided by " + laterProducer
+                            + ", later in the chain");
+                } else if (!injectable(injector, scope, needed)) {
+                    unsatisfied.add(type.getName() + " needs " + needed.getName()
+                            + " which nothing in the chain or the event provides");
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (outputs[i] != null && outputs[i].length > 0 && consumed[i].isEmpty()) {
+                unused.add(types.get(i));
+            }
+        }
+        int[] levelOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            // Never put an Acteur in an earlier level than one before it in
+            // the chain - otherwise a done state could skip an Acteur which
+            // sequentially would have run, and states would be applied to
+            // the scope out of order
+            int level = i == 0 ? 0 : levelOf[i - 1];
+            for (int j = dependsOn[i].nextSetBit(0); j >= 0; j = dependsOn[i].nextSetBit(j + 1)) {
+                level = Math.max(level, levelOf[j] + 1);
+            }
+            levelOf[i] = level;
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<Integer>());
+            }
+            levels.get(level).add(i);
+        }
+    }
+
+    private static boolean isAssignableFromAny(Class<?> needed, Class<?>... types) {
+        for (Class<?> type : types) {
+            if (needed.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean injectable(Injector injector, final ReentrantScope scope, Class<?> type) {
+        Binding<?> binding;
+        try {
+            binding = injector.getBinding(type);
+        } catch (ConfigurationException e) {
+            return false;
+        }
+        // A type bound in the scope can only come from the event or an Acteur
+        if (ChainScope.isFrameBound(binding)) {
+            return false;
+        }
+        Boolean inScope = binding.acceptScopingVisitor(new DefaultBindingScopingVisitor<Boolean>() {
+            @Override
+            public Boolean visitScope(Scope s) {
+                return s == scope;
+            }
+        });
+        return !Boolean.TRUE.equals(inScope);
+    }
+
+    static Set<Class<?>> dependencies(Class<? extends Acteur> type) {
+        Set<Class<?>> result = new LinkedHashSet<>();
+        List<InjectionPoint> points = new ArrayList<>();
+        points.add(InjectionPoint.forConstructorOf(type));
+        points.addAll(InjectionPoint.forInstanceMethodsAndFields(type));
+        for (InjectionPoint point : points) {
+            for (Dependency<?> dep : point.getDependencies()) {
+                result.add(rawType(dep.getKey()));
+            }
+        }
+        return result;
+    }
+
+    private static Class<?> rawType(Key<?> key) {
+        Class<?> raw = key.getTypeLiteral().getRawType();
+        Type type = key.getTypeLiteral().getType();
+        if ((raw == javax.inject.Provider.class || raw == com.google.inject.Provider.class)
+                && type instanceof ParameterizedType) {
+            Type param = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (param instanceof Class<?>) {
+                return (Class<?>) param;
+            } else if (param instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) param).getRawType();
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Get the Acteur types in the chain, grouped so that each group depends
+     * only on the groups before it, and Acteurs in the same group do not
+     * depend on each other.
+     *
+     * @return A list of groups of Acteur types, in chain order
+     */
+    public List<List<Class<? extends Acteur>>> levels() {
+        List<List<Class<? extends Acteur>>> result = new ArrayList<>(levels.size());
+        for (List<Integer> level : levels) {
+            List<Class<? extends Acteur>> l = new ArrayList<>(level.size());
+            for (int ix : level) {
+                l.add(types.get(ix));
+            }
+            result.add(Collections.unmodifiableList(l));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    List<List<Integer>> levelIndices() {
+        return levels;
+    }
+
+    List<Class<? extends Acteur>> types() {
+        return types;
+    }
+
+    /**
+     * Determine if any Acteurs in the chain can be run concurrently
+     *
+     * @return true if some level contains more than one Acteur
+     */
+    public boolean isParallel() {
+        return levels.size() < types.size();
+    }
+
+    /**
+     * Acteurs which declare outputs that no later Acteur in the chain injects
+     *
+     * @return A list of Acteur types
+     */
+    public List<Class<? extends Acteur>> unusedActeurs() {
+        return Collections.unmodifiableList(unused);
+    }
+
+    /**
+     * Descriptions of any dependencies of Acteurs in the chain which nothing
+     * earlier in the chain, nor the event, can provide
+     *
+     * @return A list of messages, empty if the chain is sound
+     */
+    public List<String> unsatisfiedDependencies() {
+        return Collections.unmodifiableList(unsatisfied);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < levels.size(); i++) {
+            sb.append("Level ").append(i).append(':');
+            for (int ix : levels.get(i)) {
+                sb.append(' ').append(types.get(ix).getSimpleName());
+            }
+            sb.append('\n');
+        }
+        for (Class<? extends Acteur> type : unused) {
+            sb.append("Unused: ").append(type.getName()).append('\n');
+        }
+        for (String msg : unsatisfied) {
+            sb.append("Unsatisfied: ").append(msg).append('\n');
+        }
+        return sb.toString();
+    }
+}
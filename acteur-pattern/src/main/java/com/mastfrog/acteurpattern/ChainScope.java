@@ -0,0 +1,178 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.google.inject.Binder;
+import com.google.inject.Binding;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+import com.google.inject.Scope;
+import com.google.inject.Stage;
+import com.google.inject.spi.DefaultBindingScopingVisitor;
+import com.google.inject.spi.ProviderInstanceBinding;
+import com.google.inject.spi.ProviderKeyBinding;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.logging.Logger;
+
+/**
+ * Binds the types Acteurs inject from the scope so that ThreadedChainRunner
+ * and DagChainRunner can hand an event from thread to thread in constant
+ * time.  Use in place of <code>ReentrantScope.bindTypes()</code>:
+ * <pre>
+ * ChainScope.bindTypes(binder(), scope, User.class, StringBuilder.class);
+ * </pre>
+ * Objects are looked up in the frames of the event being processed on the
+ * current thread, and otherwise in the scope, so types bound this way still
+ * work with ChainRunner and with <code>scope.enter()</code>.
+ * <p>
+ * Types bound directly in the scope also still work with the threaded runners,
+ * but every hop then has to enter the scope with everything the event has
+ * accumulated so far.
+ *
+ * @author Tim Boudreau
+ */
+public final class ChainScope {
+
+    private ChainScope() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Bind some types to be looked up in the current event's frames, falling
+     * back to the scope
+     *
+     * @param binder The binder
+     * @param scope The scope to fall back to
+     * @param types The types
+     */
+    public static void bindTypes(Binder binder, ReentrantScope scope, Class<?>... types) {
+        for (Class<?> type : types) {
+            bind(binder, scope, type);
+        }
+    }
+
+    private static <T> void bind(Binder binder, ReentrantScope scope, Class<T> type) {
+        Key<T> key = Key.get(type);
+        binder.bind(key).toProvider(new FrameProvider<>(type, scope.scope(key, new OutOfScopeProvider<>(type))));
+    }
+
+    /**
+     * Determine whether any Acteur in a chain injects a type which is bound
+     * directly in the scope (or by some other provider), so the objects an
+     * event accumulates must actually be entered into the scope.
+     *
+     * @param chain The chain
+     * @param scope The scope
+     * @return true unless everything the chain injects from the scope is
+     * bound with this class
+     */
+    static boolean needsScopeEntry(Chain chain, final ReentrantScope scope) {
+        Injector injector = chain.injector();
+        for (Class<? extends Acteur> type : chain.acteurTypes) {
+            Iterable<Class<?>> deps;
+            try {
+                deps = ChainAnalysis.dependencies(type);
+            } catch (ConfigurationException e) {
+                return true;
+            }
+            for (Class<?> dep : deps) {
+                if (dep == Injector.class || dep == Logger.class || dep == Stage.class) {
+                    continue;
+                }
+                Binding<?> binding = injector.getExistingBinding(Key.get(dep));
+                if (binding == null) {
+                    continue;
+                }
+                if (binding instanceof ProviderInstanceBinding<?>) {
+                    if (!isFrameBound(binding)) {
+                        return true;
+                    }
+                } else if (binding instanceof ProviderKeyBinding<?>) {
+                    return true;
+                }
+                Boolean inScope = binding.acceptScopingVisitor(new DefaultBindingScopingVisitor<Boolean>() {
+                    @Override
+                    public Boolean visitScope(Scope s) {
+                        return s == scope;
+                    }
+                });
+                if (Boolean.TRUE.equals(inScope)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if a binding was created by this class
+     *
+     * @param binding A binding
+     * @return true if it looks objects up in the current event's frames
+     */
+    static boolean isFrameBound(Binding<?> binding) {
+        return binding instanceof ProviderInstanceBinding<?>
+                && ((ProviderInstanceBinding<?>) binding).getProviderInstance() instanceof FrameProvider<?>;
+    }
+
+    private static final class FrameProvider<T> implements Provider<T> {
+
+        private final Class<T> type;
+        private final Provider<T> fallback;
+
+        FrameProvider(Class<T> type, Provider<T> fallback) {
+            this.type = type;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public T get() {
+            ScopeFrame frame = ScopeFrame.current();
+            T result = frame == null ? null : frame.find(type);
+            return result != null ? result : fallback.get();
+        }
+
+        @Override
+        public String toString() {
+            return "FrameProvider<" + type.getName() + ">";
+        }
+    }
+
+    private static final class OutOfScopeProvider<T> implements Provider<T> {
+
+        private final Class<T> type;
+
+        OutOfScopeProvider(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public T get() {
+            throw new OutOfScopeException("No " + type.getName() + " in scope");
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.mastfrog.acteurpattern.ThreadedChainRunner.Finisher;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs the Acteurs in a chain in the order dictated by their dependencies on
+ * each other, as computed by ChainAnalysis, rather than one at a time.  All
+ * the Acteurs in one level of the analysis are dispatched to the thread pool
+ * at once;  when the last finishes, their states are applied in chain order,
+ * as if they had run sequentially, and the next level is dispatched.
+ * <p>
+ * Levels follow chain order, so everything before an Acteur in the chain has
+ * run by the time its level completes, and an Acteur whose state may be done
+ * is always the last in its level, so nothing after it has run.  Only Acteurs
+ * annotated with <code>{@link Outputs}(mayFinish = false)</code> run
+ * concurrently with Acteurs after them;  if one of those returns a done
+ * state anyway, processing stops with a failure.
+ * <p>
+ * If an Acteur throws, the rest of its level still completes, no further
+ * levels are run, and the finisher is passed a RunResult whose
+ * <code>failure()</code> is the exception.
+ *
+ * @author Tim Boudreau
+ */
+public final class DagChainRunner<T> {
+
+    private static final Logger LOG = Logger.getLogger(DagChainRunner.class.getName());
+    private final Chain chain;
+    private final ReentrantScope scope;
+    private final ExecutorService svc;
+    private final ChainAnalysis analysis;
+    private final CallerScope callerScope;
+    private final boolean enterFrames;
+
+    /**
+     * Create a new runner, analyzing the chain
+     *
+     * @param chain The chain it runs on
+     * @param scope The scope to use for injection
+     * @param svc A thread pool
+     * @param eventTypes The types of the object and any additional contents
+     * which will be passed to <code>onEvent()</code>
+     * @throws IllegalStateException if some Acteur in the chain has a
+     * dependency which cannot be satisfied
+     */
+    public DagChainRunner(Chain chain, ReentrantScope scope, ExecutorService svc, Class<?>... eventTypes) {
+        this.chain = chain;
+        this.scope = scope;
+        this.svc = svc;
+        this.analysis = chain.analyze(scope, eventTypes);
+        this.callerScope = new CallerScope(scope);
+        this.enterFrames = ChainScope.needsScopeEntry(chain, scope);
+        if (!analysis.unsatisfiedDependencies().isEmpty()) {
+            throw new IllegalStateException("Unsatisfiable chain:\n" + analysis);
+        }
+        for (Class<? extends Acteur> unused : analysis.unusedActeurs()) {
+            LOG.warning("Nothing in the chain uses the outputs of " + unused.getName());
+        }
+    }
+
+    /**
+     * Get the analysis this runner uses to schedule Acteurs
+     *
+     * @return The analysis
+     */
+    public ChainAnalysis analysis() {
+        return analysis;
+    }
+
+    /**
+     * Call this method to dispatch something to the chain.  This method will
+     * dispatch the first level of acteurs on background threads;  it returns
+     * immediately.
+     *
+     * @param obj The object to decorate or process
+     * @param finisher A callback which is called on completion
+     * @param moreContents Any additional objects to include in the scope
+     * @return A CountDownLatch which tests or similar could wait on before
+     * checking results
+     */
+    public CountDownLatch onEvent(T obj, Finisher<T> finisher, Object... moreContents) {
+        CountDownLatch latch = new CountDownLatch(1);
+        Run run = new Run(obj, finisher, latch, ScopeFrame.root(callerScope.snapshot(), obj).push(moreContents));
+        run.level(0);
+        return latch;
+    }
+
+    private final class Run {
+
+        private final T obj;
+        private final Finisher<T> finisher;
+        private final CountDownLatch latch;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private RunResult result = new RunResult();
+        private ScopeFrame frame;
+        private State[] states;
+        private Throwable[] failures;
+        private List<Integer> indices;
+
+        Run(T obj, Finisher<T> finisher, CountDownLatch latch, ScopeFrame frame) {
+            this.obj = obj;
+            this.finisher = finisher;
+            this.latch = latch;
+            this.frame = frame;
+        }
+
+        void level(int level) {
+            List<List<Integer>> levels = analysis.levelIndices();
+            if (level >= levels.size() || result.wasDone() || result.failure() != null) {
+                finisher.onDone(obj, result);
+                latch.countDown();
+                return;
+            }
+            indices = levels.get(level);
+            states = new State[indices.size()];
+            failures = new Throwable[indices.size()];
+            remaining.set(indices.size());
+            for (int i = 0; i < indices.size(); i++) {
+                Class<? extends Acteur> type = analysis.types().get(indices.get(i));
+                svc.submit(new OneActeurCallable(this, level, i, type, frame));
+            }
+        }
+
+        void onActeurDone(int level, int slot, State state, Throwable failure) {
+            states[slot] = state;
+            failures[slot] = failure;
+            // The last Acteur in the level to finish moves the run along;
+            // decrementAndGet() publishes the other threads' states to it
+            if (remaining.decrementAndGet() == 0) {
+                for (int i = 0; i < states.length; i++) {
+                    if (failures[i] != null) {
+                        result = new RunResult(result, failures[i]);
+                        break;
+                    }
+                    State st = states[i];
+                    if (st.isDone() && i < states.length - 1) {
+                        // Only Acteurs which promised not to finish are
+                        // followed by others in the same level
+                        result = new RunResult(result, new IllegalStateException(
+                                analysis.types().get(indices.get(i)).getName()
+                                + " is annotated with mayFinish = false but its state is done"));
+                        break;
+                    }
+                    result = new RunResult(result, st);
+                    if (st.isDone()) {
+                        break;
+                    }
+                    frame = frame.push(st.context());
+                }
+                level(level + 1);
+            }
+        }
+    }
+
+    private class OneActeurCallable implements Callable<Void> {
+
+        private final Run run;
+        private final int level;
+        private final int slot;
+        private final Class<? extends Acteur> type;
+        private final ScopeFrame frame;
+
+        OneActeurCallable(Run run, int level, int slot, Class<? extends Acteur> type, ScopeFrame frame) {
+            this.run = run;
+            this.level = level;
+            this.slot = slot;
+            this.type = type;
+            this.frame = frame;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            State state = null;
+            Throwable failure = null;
+            try {
+                state = frame.call(scope, enterFrames, new Callable<State>() {
+                    @Override
+                    public State call() throws Exception {
+                        return chain.create(type).getState();
+                    }
+                });
+            } catch (Exception | Error e) {
+                failure = e;
+            }
+            run.onActeurDone(level, slot, state, failure);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Earliest-deadline-first scheduling of Acteurs over a thread pool.  Pending
+ * Acteurs wait in a single priority queue ordered by their event's deadline;
+ * each task handed to the pool runs whichever is most urgent when it starts.
+ * Every ThreadedChainRunner which uses a given pool should share one
+ * scheduler, so that Acteurs from all of their chains are ordered together.
+ *
+ * @author Tim Boudreau
+ */
+public final class DeadlineScheduler {
+
+    /**
+     * The furthest away a deadline may be.  Deadlines are compared by their
+     * difference, which must not overflow.
+     */
+    static final long MAX_DEADLINE_NANOS = Long.MAX_VALUE / 2;
+    private final ExecutorService svc;
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Callable<Void> runEarliest = new RunEarliest();
+
+    /**
+     * Create a new scheduler
+     *
+     * @param svc The thread pool to run Acteurs on
+     */
+    public DeadlineScheduler(ExecutorService svc) {
+        this.svc = svc;
+    }
+
+    /**
+     * Compute an absolute deadline
+     *
+     * @param deadline How long from now
+     * @param unit The unit
+     * @return A deadline comparable with values from
+     * <code>System.nanoTime()</code>
+     * @throws IllegalArgumentException if the deadline is negative
+     */
+    static long deadline(long deadline, TimeUnit unit) {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("Negative deadline " + deadline + " " + unit);
+        }
+        return System.nanoTime() + Math.min(unit.toNanos(deadline), MAX_DEADLINE_NANOS);
+    }
+
+    void submit(Task task) {
+        task.seq = sequence.getAndIncrement();
+        queue.offer(task);
+        svc.submit(runEarliest);
+    }
+
+    private class RunEarliest implements Callable<Void> {
+
+        @Override
+        public Void call() throws Exception {
+            Task task = queue.poll();
+            return task == null ? null : task.call();
+        }
+    }
+
+    /**
+     * A unit of work with a deadline
+     */
+    abstract static class Task implements Callable<Void>, Comparable<Task> {
+
+        private final long deadline;
+        private long seq;
+
+        Task(long deadline) {
+            this.deadline = deadline;
+        }
+
+        long deadline() {
+            return deadline;
+        }
+
+        @Override
+        public final int compareTo(Task o) {
+            // Compare the difference, as nanoTime() values may overflow
+            long diff = deadline - o.deadline;
+            if (diff == 0) {
+                diff = seq - o.seq;
+            }
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the types of objects an Acteur may put into the context of the
+ * State it returns.  Used by ChainAnalysis to work out which Acteurs in a
+ * chain depend on which.  An Acteur which is not annotated is assumed to be
+ * able to produce anything, so every Acteur after it in the chain depends on
+ * it, and it is never run concurrently with Acteurs before it;  annotate with
+ * an empty array for an Acteur that produces nothing.
+ * <p>
+ * Whether an Acteur's State will be done can't be known in advance, so unless
+ * it is annotated with <code>mayFinish = false</code>, every Acteur after it
+ * in the chain waits for it, as nothing after a done State may run.
+ * <p>
+ * An Acteur which mutates an object that a later Acteur also uses, without
+ * putting it in its State, should list that type too, or the two may be run
+ * concurrently.
+ *
+ * @author Tim Boudreau
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Outputs {
+
+    Class<?>[] value();
+
+    /**
+     * Whether the Acteur may return a State which is done.  Set to false to
+     * allow Acteurs after it in the chain to run concurrently with it.
+     *
+     * @return false if the Acteur's state is never done
+     */
+    boolean mayFinish() default true;
+}
@@ -0,0 +1,57 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Priority classes for events dispatched to a ThreadedChainRunner which
+ * schedules earliest-deadline-first.  Each class is simply a default deadline
+ * relative to when the event was submitted, so lower classes cannot be
+ * starved - once a bulk event has waited long enough, its deadline is
+ * earlier than that of newly arrived interactive ones.
+ *
+ * @author Tim Boudreau
+ */
+public enum Priority {
+
+    INTERACTIVE(10),
+    NORMAL(100),
+    BULK(1000);
+    private final long deadlineMillis;
+
+    Priority(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * How long after submission an event of this class should be finished
+     *
+     * @param unit The unit to return
+     * @return The relative deadline
+     */
+    public long deadline(TimeUnit unit) {
+        return unit.convert(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -30,19 +30,36 @@ package com.mastfrog.acteurpattern;
 public final class RunResult<T> {
     private final boolean wasLocked;
     private final boolean wasDone;
+    private final Throwable failure;
 
     public RunResult() {
         this(false, false);
     }
 
+    /**
+     * Create a result for processing which was abandoned because an Acteur
+     * failed
+     *
+     * @param prev The result before the failure
+     * @param failure The failure
+     */
+    public RunResult(RunResult prev, Throwable failure) {
+        this(prev.wasLocked(), false, failure);
+    }
+
     public RunResult(RunResult prev, State state) {
         this(prev.wasLocked() || state.isLocked(), state.isDone());
         assert !prev.wasDone();
     }
 
     public RunResult(boolean wasLocked, boolean wasDone) {
+        this(wasLocked, wasDone, null);
+    }
+
+    private RunResult(boolean wasLocked, boolean wasDone, Throwable failure) {
         this.wasLocked = wasLocked;
         this.wasDone = wasDone;
+        this.failure = failure;
     }
 
     public boolean wasLocked() {
@@ -52,4 +69,13 @@ public final class RunResult<T> {
     public boolean wasDone() {
         return wasDone;
     }
+
+    /**
+     * The exception which stopped processing, if an Acteur failed
+     *
+     * @return A throwable or null
+     */
+    public Throwable failure() {
+        return failure;
+    }
 }
@@ -0,0 +1,209 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.mastfrog.guicy.scope.ReentrantScope;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import java.util.concurrent.Callable;
+
+/**
+ * Persistent, structurally shared stack of the objects an event has added to
+ * the scope.  Pushing a frame never copies what is already there - it just
+ * creates a new frame pointing at its parent.  To run an Acteur, a worker
+ * thread makes the frame {@link #current() current}, which costs the same
+ * whether the chain has run one Acteur or fifty;  types bound with
+ * {@link ChainScope} are looked up by walking the frames only when they are
+ * injected.
+ * <p>
+ * Types bound directly in a ReentrantScope can't see the current frame, so
+ * for chains which inject any of those, the worker also has to
+ * {@link #enter(ReentrantScope) enter} the scope once for every frame.
+ *
+ * @author Tim Boudreau
+ */
+final class ScopeFrame {
+
+    private static final Object[] EMPTY = new Object[0];
+    private static final ThreadLocal<ScopeFrame> CURRENT = new ThreadLocal<>();
+    private final ScopeFrame parent;
+    private final Object[] contents;
+    private final int depth;
+    private final Callable<?> callerScope;
+
+    private ScopeFrame(ScopeFrame parent, Object[] contents, Callable<?> callerScope) {
+        this.parent = parent;
+        this.contents = contents;
+        this.depth = parent == null ? 1 : parent.depth + 1;
+        this.callerScope = callerScope;
+    }
+
+    /**
+     * Create the bottom frame for an event
+     *
+     * @param callerScope A snapshot of the scope contents of the thread
+     * which dispatched the event, from CallerScope, or null
+     * @param contents The initial objects
+     * @return A frame
+     */
+    static ScopeFrame root(Callable<?> callerScope, Object... contents) {
+        return new ScopeFrame(null, contents == null ? EMPTY : contents, callerScope);
+    }
+
+    /**
+     * Create a frame with some objects layered over the contents of this
+     * one.  This frame is not modified.
+     *
+     * @param contents Objects to add
+     * @return A new frame, or this one if there is nothing to add
+     */
+    ScopeFrame push(Object... contents) {
+        if (contents == null || contents.length == 0) {
+            return this;
+        }
+        return new ScopeFrame(this, contents, callerScope);
+    }
+
+    ScopeFrame parent() {
+        return parent;
+    }
+
+    /**
+     * The objects added by this frame, not including its parents
+     *
+     * @return An array of objects
+     */
+    Object[] contents() {
+        return contents;
+    }
+
+    /**
+     * The number of frames, including this one
+     *
+     * @return The depth
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * The frame of the event being processed on this thread, if any
+     *
+     * @return A frame or null
+     */
+    static ScopeFrame current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Find an object of the given type, looking at the most recently pushed
+     * frames first
+     *
+     * @param type The type
+     * @return An object or null
+     */
+    <T> T find(Class<T> type) {
+        for (ScopeFrame f = this; f != null; f = f.parent) {
+            for (Object o : f.contents) {
+                if (type.isInstance(o)) {
+                    return type.cast(o);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Run some code with this frame current, within the scope contents of
+     * the thread which dispatched the event.
+     *
+     * @param scope The scope
+     * @param enterFrames If true, also enter the scope with the contents of
+     * every frame, for types bound directly in the scope
+     * @param body The code to run
+     * @return Whatever the body returns
+     * @throws Exception If the body throws
+     */
+    <T> T call(final ReentrantScope scope, boolean enterFrames, final Callable<T> body) throws Exception {
+        Callable<T> toRun = body;
+        if (enterFrames) {
+            toRun = new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    try (QuietAutoCloseable ac = enter(scope)) {
+                        return body.call();
+                    }
+                }
+            };
+        }
+        ScopeFrame old = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callerScope == null ? toRun.call() : CallerScope.call(callerScope, toRun);
+        } finally {
+            if (old == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(old);
+            }
+        }
+    }
+
+    /**
+     * Enter the scope with the contents of each frame, oldest first, just as
+     * ChainRunner's nested calls to <code>enter()</code> do, so that objects
+     * from later frames are found ahead of older ones of the same type.
+     *
+     * @param scope The scope
+     * @return An object which exits all of the frames when closed
+     */
+    QuietAutoCloseable enter(ReentrantScope scope) {
+        ScopeFrame[] frames = new ScopeFrame[depth];
+        for (ScopeFrame f = this; f != null; f = f.parent) {
+            frames[f.depth - 1] = f;
+        }
+        final QuietAutoCloseable[] entered = new QuietAutoCloseable[depth];
+        int count = 0;
+        try {
+            for (ScopeFrame f : frames) {
+                entered[count] = scope.enter(f.contents);
+                count++;
+            }
+        } catch (RuntimeException | Error e) {
+            exit(entered, count);
+            throw e;
+        }
+        return new QuietAutoCloseable() {
+            @Override
+            public void close() {
+                exit(entered, entered.length);
+            }
+        };
+    }
+
+    private static void exit(QuietAutoCloseable[] entered, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            entered[i].close();
+        }
+    }
+}
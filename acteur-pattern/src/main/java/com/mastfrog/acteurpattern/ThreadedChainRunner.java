@@ -24,16 +24,30 @@
 package com.mastfrog.acteurpattern;
 
 import com.mastfrog.guicy.scope.ReentrantScope;
-import com.mastfrog.util.thread.QuietAutoCloseable;
 import java.util.Iterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Parallel executor of Acteurs.  Does the same thing as ChainRunner, but 
  * uses a thread pool, and each Acteur is invoked as a separate Callable
  * dispatched to the thread pool.
+ * <p>
+ * What the thread calling <code>onEvent()</code> has in scope is captured
+ * once per event;  after that, handing the event to the next Acteur only
+ * passes a pointer to the objects it has accumulated so far.  For that to
+ * be constant-time, bind the types the chain's Acteurs inject using
+ * {@link ChainScope}.
+ * <p>
+ * By default Acteurs are run in the order the thread pool gets to them.  A
+ * runner created with a {@link DeadlineScheduler} instead gives each event a
+ * deadline - explicitly or from its {@link Priority} - which every Acteur in
+ * the chain inherits, and always runs the pending Acteur with the earliest
+ * deadline next, so an event's later Acteurs are not queued behind everything
+ * submitted since it started.  Runners sharing a thread pool should share a
+ * scheduler.
  *
  * @author Tim Boudreau
  */
@@ -42,6 +56,9 @@ public final class ThreadedChainRunner<T> {
     private final Chain chain;
     private final ReentrantScope scope;
     private final ExecutorService svc;
+    private final CallerScope callerScope;
+    private final boolean enterFrames;
+    private final DeadlineScheduler scheduler;
 
     /**
      * Create a new runner
@@ -50,9 +67,42 @@ public final class ThreadedChainRunner<T> {
      * @param svc A thread pool
      */
     public ThreadedChainRunner(Chain chain, ReentrantScope scope, ExecutorService svc) {
+        this(chain, scope, svc, false);
+    }
+
+    /**
+     * Create a new runner
+     * @param chain The chain it runs on
+     * @param scope The scope to use for injection
+     * @param svc A thread pool
+     * @param earliestDeadlineFirst If true, whenever a thread in the pool
+     * becomes available, run the pending Acteur whose event has the earliest
+     * deadline, rather than the one submitted first.  Only this runner's
+     * Acteurs are ordered;  if other runners use the same pool, use a shared
+     * DeadlineScheduler instead.
+     */
+    public ThreadedChainRunner(Chain chain, ReentrantScope scope, ExecutorService svc, boolean earliestDeadlineFirst) {
+        this(chain, scope, svc, earliestDeadlineFirst ? new DeadlineScheduler(svc) : null);
+    }
+
+    /**
+     * Create a new runner which schedules Acteurs earliest-deadline-first,
+     * along with those of any other runners using the same scheduler
+     * @param chain The chain it runs on
+     * @param scope The scope to use for injection
+     * @param scheduler The scheduler
+     */
+    public ThreadedChainRunner(Chain chain, ReentrantScope scope, DeadlineScheduler scheduler) {
+        this(chain, scope, null, scheduler);
+    }
+
+    private ThreadedChainRunner(Chain chain, ReentrantScope scope, ExecutorService svc, DeadlineScheduler scheduler) {
         this.chain = chain;
         this.scope = scope;
-        this.svc = scope.wrapThreadPool(svc);
+        this.svc = svc;
+        this.callerScope = new CallerScope(scope);
+        this.enterFrames = ChainScope.needsScopeEntry(chain, scope);
+        this.scheduler = scheduler;
     }
 
     /**
@@ -67,62 +117,109 @@ public final class ThreadedChainRunner<T> {
      * checking results
      */
     public CountDownLatch onEvent(T obj, Finisher<T> finisher, Object... moreContents) {
-        // Enter the scope with our initial obbject
-        try (QuietAutoCloseable cl = scope.enter(obj)) {
-            // Get our iterator of dynamically created Acteurs
-            Iterator<Acteur> iter = chain.iterator();
-            // Invoke recursively
-            CountDownLatch latch = new CountDownLatch(1);;
-            next(obj, iter, new RunResult(), latch, finisher, moreContents);
-            return latch;
-        }
+        return onEvent(obj, Priority.NORMAL, finisher, moreContents);
     }
 
-    private void next(T obj, Iterator<Acteur> iter, RunResult result, CountDownLatch latch, Finisher<T> finisher, Object... lastStateContext) {
+    /**
+     * Dispatch something to the chain with a given priority class.  The
+     * priority only has an effect if this runner schedules
+     * earliest-deadline-first.
+     *
+     * @param obj The object to decorate or process
+     * @param priority The priority class, which determines the deadline
+     * @param finisher A callback which is called on completion
+     * @param moreContents Any additional objects to include in the scope
+     * @return A CountDownLatch which tests or similar could wait on before
+     * checking results
+     */
+    public CountDownLatch onEvent(T obj, Priority priority, Finisher<T> finisher, Object... moreContents) {
+        return onEvent(obj, priority.deadline(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS, finisher, moreContents);
+    }
+
+    /**
+     * Dispatch something to the chain with a given deadline.  The deadline
+     * only has an effect if this runner schedules earliest-deadline-first.
+     *
+     * @param obj The object to decorate or process
+     * @param deadline How long from now processing should be finished by;
+     * very large values, such as <code>Long.MAX_VALUE</code>, are treated as
+     * the furthest possible deadline
+     * @param unit The unit of the deadline
+     * @param finisher A callback which is called on completion
+     * @param moreContents Any additional objects to include in the scope
+     * @return A CountDownLatch which tests or similar could wait on before
+     * checking results
+     * @throws IllegalArgumentException if the deadline is negative
+     */
+    public CountDownLatch onEvent(T obj, long deadline, TimeUnit unit, Finisher<T> finisher, Object... moreContents) {
+        long deadlineNanos = DeadlineScheduler.deadline(deadline, unit);
+        // The scope contents for this event start with whatever the calling
+        // thread has in scope, and our initial object
+        ScopeFrame frame = ScopeFrame.root(callerScope.snapshot(), obj).push(moreContents);
+        // Get our iterator of dynamically created Acteurs
+        Iterator<Acteur> iter = chain.iterator();
+        // Invoke recursively
+        CountDownLatch latch = new CountDownLatch(1);
+        next(obj, iter, new RunResult(), latch, finisher, frame, deadlineNanos);
+        return latch;
+    }
+
+    private void next(T obj, Iterator<Acteur> iter, RunResult result, CountDownLatch latch, Finisher<T> finisher, ScopeFrame frame, long deadline) {
         if (!iter.hasNext() || result.wasDone()) {
             finisher.onDone(obj, result);
+            latch.countDown();
+            return;
+        }
+        // Rather than freezing the scope contents on this thread, we just hand
+        // the next Acteur a pointer to the (immutable) frame holding everything
+        // added so far, which the worker makes current
+        OneActeurCallable callable = new OneActeurCallable(obj, finisher, iter, result, latch, frame, deadline);
+        if (scheduler == null) {
+            svc.submit(callable);
+        } else {
+            scheduler.submit(callable);
         }
-        // The wrapped thread pool will freeze the current scope contents, and reconstitute it
-        // before invoking our next Acteur
-        svc.submit(new OneActeurCallable (obj, finisher, iter, result, latch, lastStateContext));
     }
 
-    private class OneActeurCallable implements Callable<Void> {
+    private class OneActeurCallable extends DeadlineScheduler.Task {
 
         private final T obj;
         private final Finisher<T> finisher;
         private final Iterator<Acteur> iter;
         private final RunResult result;
         private final CountDownLatch latch;
-        private final Object[] lastStateContext;
+        private final ScopeFrame frame;
 
-        OneActeurCallable(T obj, Finisher<T> finisher, Iterator<Acteur> iter, RunResult result, CountDownLatch latch, Object... lastStateContext) {
+        OneActeurCallable(T obj, Finisher<T> finisher, Iterator<Acteur> iter, RunResult result, CountDownLatch latch, ScopeFrame frame, long deadline) {
+            super(deadline);
             assert iter.hasNext();
             this.obj = obj;
             this.finisher = finisher;
             this.iter = iter;
             this.result = result;
             this.latch = latch;
-            this.lastStateContext = lastStateContext;
+            this.frame = frame;
         }
 
         @Override
         public Void call() throws Exception {
-            assert scope.inScope();
-            try (QuietAutoCloseable ac = scope.enter(lastStateContext)) {
-                Acteur acteur = iter.next();
-                State state = acteur.getState();
-                RunResult newResult = new RunResult(result, state);
-                if (!state.isDone()) {
-                    // Call ourselves back recursively
-                    next(obj, iter, newResult, latch, finisher, state.context());
-                } else {
-                    // We are finished, move along
-                    finisher.onDone(obj, newResult);
-                    latch.countDown();;
+            return frame.call(scope, enterFrames, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Acteur acteur = iter.next();
+                    State state = acteur.getState();
+                    RunResult newResult = new RunResult(result, state);
+                    if (!state.isDone()) {
+                        // Call ourselves back recursively
+                        next(obj, iter, newResult, latch, finisher, frame.push(state.context()), deadline());
+                    } else {
+                        // We are finished, move along
+                        finisher.onDone(obj, newResult);
+                        latch.countDown();
+                    }
+                    return null;
                 }
-            }
-            return null;
+            });
         }
     }
 
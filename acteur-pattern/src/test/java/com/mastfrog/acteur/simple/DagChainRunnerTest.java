@@ -0,0 +1,333 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.simple;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mastfrog.acteurpattern.Acteur;
+import com.mastfrog.acteurpattern.Chain;
+import com.mastfrog.acteurpattern.ChainAnalysis;
+import com.mastfrog.acteurpattern.DagChainRunner;
+import com.mastfrog.acteurpattern.Outputs;
+import com.mastfrog.acteurpattern.RunResult;
+import com.mastfrog.acteurpattern.State;
+import com.mastfrog.acteurpattern.ThreadedChainRunner.Finisher;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.inject.Inject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DagChainRunnerTest {
+
+    @Test
+    public void testAnalysis() {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, FindUser.class, FindGreeting.class, CountVisits.class, Render.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        System.out.println(analysis);
+        assertTrue(analysis.isParallel());
+        assertEquals(2, analysis.levels().size());
+        assertEquals(Arrays.asList(FindUser.class, FindGreeting.class, CountVisits.class), analysis.levels().get(0));
+        assertEquals(Arrays.<Class<?>>asList(Render.class), analysis.levels().get(1));
+        assertEquals(Arrays.<Class<?>>asList(CountVisits.class), analysis.unusedActeurs());
+        assertTrue(analysis.unsatisfiedDependencies().isEmpty());
+    }
+
+    @Test
+    public void testUnannotatedActeurIsABarrier() {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, FindUser.class, Unannotated.class, FindGreeting.class, Render.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        assertFalse(analysis.isParallel());
+        assertEquals(4, analysis.levels().size());
+    }
+
+    @Test
+    public void testLevelsFollowChainOrder() {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        // Stop depends on nothing, but must not run before Greet
+        Chain chain = new Chain(inj, FindUser.class, Greet.class, Stop.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        assertEquals(Arrays.<Class<?>>asList(FindUser.class), analysis.levels().get(0));
+        assertEquals(Arrays.asList(Greet.class, Stop.class), analysis.levels().get(1));
+    }
+
+    @Test
+    public void testDoneDoesNotSkipEarlierActeurs() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, FindUser.class, Greet.class, Stop.class);
+        StringBuilder sb = new StringBuilder();
+        RunResult res = run(chain, scope, sb);
+        assertEquals("Hi, Marvin", sb.toString());
+        assertTrue(res.wasDone());
+        assertTrue(res.wasLocked());
+    }
+
+    @Test
+    public void testLaterActeurInChainWins() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        // Rename has to wait for FindGreeting, FindUser does not, but FindUser
+        // is later in the chain, so its User is the one Render should get
+        Chain chain = new Chain(inj, FindGreeting.class, Rename.class, FindUser.class, Render.class);
+        StringBuilder sb = new StringBuilder();
+        RunResult res = run(chain, scope, sb);
+        assertEquals("Hello, Marvin!", sb.toString());
+        assertTrue(res.wasDone());
+    }
+
+    @Test
+    public void testActeurWhichMayFinishIsABarrier() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        // Scribble depends on nothing Stop produces, but Stop may be done
+        Chain chain = new Chain(inj, Stop.class, Scribble.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        assertEquals(Arrays.<Class<?>>asList(Stop.class), analysis.levels().get(0));
+        assertEquals(Arrays.<Class<?>>asList(Scribble.class), analysis.levels().get(1));
+        StringBuilder sb = new StringBuilder();
+        RunResult res = run(chain, scope, sb);
+        assertEquals("", sb.toString());
+        assertTrue(res.wasDone());
+        assertNull(res.failure());
+    }
+
+    @Test
+    public void testDoneFromActeurWhichMayNotFinishIsAFailure() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, BrokenPromise.class, Scribble.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        assertEquals(1, analysis.levels().size());
+        RunResult res = run(chain, scope, new StringBuilder());
+        assertTrue(res.failure() instanceof IllegalStateException);
+        assertFalse(res.wasDone());
+    }
+
+    @Test
+    public void testFailureIsReported() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, FindUser.class, Boom.class, FindGreeting.class, Render.class);
+        StringBuilder sb = new StringBuilder();
+        RunResult res = run(chain, scope, sb);
+        assertNotNull(res.failure());
+        assertFalse(res.wasDone());
+        // Render is in the next level, which never ran
+        assertEquals("", sb.toString());
+    }
+
+    @Test
+    public void testRun() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, FindUser.class, FindGreeting.class, Render.class);
+        StringBuilder sb = new StringBuilder();
+        RunResult res = run(chain, scope, sb);
+        assertEquals("Hello, Marvin!", sb.toString());
+        assertTrue(res.wasDone());
+        assertTrue(res.wasLocked());
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        Injector inj = Guice.createInjector(new DagModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        // Render needs a User, which is only found after it
+        Chain chain = new Chain(inj, FindGreeting.class, Render.class, FindUser.class);
+        ChainAnalysis analysis = chain.analyze(scope, StringBuilder.class, String.class);
+        assertEquals(analysis.toString(), 1, analysis.unsatisfiedDependencies().size());
+        // Without a String in the event, FindUser can't get its name
+        chain = new Chain(inj, FindUser.class, FindGreeting.class, Render.class);
+        analysis = chain.analyze(scope, StringBuilder.class);
+        assertEquals(analysis.toString(), 1, analysis.unsatisfiedDependencies().size());
+        try {
+            new DagChainRunner<StringBuilder>(chain, scope, Executors.newCachedThreadPool(), StringBuilder.class);
+            fail("Unsatisfiable chain should be rejected");
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+    }
+
+    private RunResult run(Chain chain, ReentrantScope scope, StringBuilder sb) throws InterruptedException {
+        ExecutorService svc = Executors.newCachedThreadPool();
+        DagChainRunner<StringBuilder> runner = new DagChainRunner<>(chain, scope, svc, StringBuilder.class, String.class);
+        final AtomicReference<RunResult> result = new AtomicReference<>();
+        CountDownLatch latch = runner.onEvent(sb, new Finisher<StringBuilder>() {
+
+            @Override
+            public void onDone(StringBuilder obj, RunResult res) {
+                result.set(res);
+            }
+        }, "Marvin");
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        svc.shutdown();
+        return result.get();
+    }
+
+    private static class DagModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            ReentrantScope scope = new ReentrantScope();
+            bind(ReentrantScope.class).toInstance(scope);
+            scope.bindTypes(binder(), User.class, Greeting.class, String.class,
+                    StringBuilder.class, Integer.class);
+        }
+    }
+
+    static final class User {
+
+        private final String name;
+
+        User(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class Greeting {
+
+        private final String text;
+
+        Greeting(String text) {
+            this.text = text;
+        }
+    }
+
+    @Outputs(value = User.class, mayFinish = false)
+    static class FindUser extends Acteur {
+
+        @Inject
+        FindUser(String name) {
+            setState(new State(true, false, new User(name)));
+        }
+    }
+
+    @Outputs(value = Greeting.class, mayFinish = false)
+    static class FindGreeting extends Acteur {
+
+        @Inject
+        FindGreeting() {
+            setState(new State(false, false, new Greeting("Hello")));
+        }
+    }
+
+    @Outputs(value = Integer.class, mayFinish = false)
+    static class CountVisits extends Acteur {
+
+        @Inject
+        CountVisits() {
+            setState(new State(false, false, 1));
+        }
+    }
+
+    static class Unannotated extends Acteur {
+
+        @Inject
+        Unannotated() {
+            setState(new State(false, false));
+        }
+    }
+
+    @Outputs(value = {}, mayFinish = false)
+    static class Greet extends Acteur {
+
+        @Inject
+        Greet(User user, StringBuilder sb) {
+            sb.append("Hi, ").append(user.name);
+            setState(new State(false, false));
+        }
+    }
+
+    @Outputs({})
+    static class Stop extends Acteur {
+
+        @Inject
+        Stop() {
+            setState(new State(true, true));
+        }
+    }
+
+    @Outputs(value = User.class, mayFinish = false)
+    static class Rename extends Acteur {
+
+        @Inject
+        Rename(Greeting greeting) {
+            setState(new State(false, false, new User("Somebody Else")));
+        }
+    }
+
+    @Outputs(value = {}, mayFinish = false)
+    static class Scribble extends Acteur {
+
+        @Inject
+        Scribble(StringBuilder sb) {
+            sb.append("scribbled");
+            setState(new State(false, false));
+        }
+    }
+
+    @Outputs(value = {}, mayFinish = false)
+    static class BrokenPromise extends Acteur {
+
+        @Inject
+        BrokenPromise() {
+            setState(new State(true, true));
+        }
+    }
+
+    @Outputs(value = {}, mayFinish = false)
+    static class Boom extends Acteur {
+
+        @Inject
+        Boom() {
+            throw new IllegalStateException("Boom");
+        }
+    }
+
+    @Outputs({})
+    static class Render extends Acteur {
+
+        @Inject
+        Render(User user, Greeting greeting, StringBuilder sb) {
+            sb.append(greeting.text).append(", ").append(user.name).append('!');
+            setState(new State(true, true));
+        }
+    }
+}
@@ -34,9 +34,12 @@ import com.mastfrog.acteurpattern.State;
 import com.mastfrog.acteurpattern.ThreadedChainRunner;
 import com.mastfrog.acteurpattern.ThreadedChainRunner.Finisher;
 import com.mastfrog.guicy.scope.ReentrantScope;
+import com.mastfrog.util.thread.QuietAutoCloseable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
 import org.junit.Test;
@@ -113,6 +116,41 @@ public class DemoTest {
 
     }
 
+    @Test
+    public void threadedRunnerSeesCallerScope() throws InterruptedException {
+        Injector inj = Guice.createInjector(new DemoModule());
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        Chain chain = new Chain(inj, ScopeProbe.class);
+        ExecutorService svc = Executors.newCachedThreadPool();
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain, scope, svc);
+        final AtomicReference<RunResult> result = new AtomicReference<>();
+        Finisher<StringBuilder> finisher = new Finisher<StringBuilder>() {
+
+            @Override
+            public void onDone(StringBuilder obj, RunResult res) {
+                result.set(res);
+            }
+        };
+        StringBuilder text = new StringBuilder();
+        CountDownLatch latch;
+        try (QuietAutoCloseable cl = scope.enter(5L)) {
+            latch = runner.onEvent(text, finisher);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        svc.shutdown();
+        assertEquals("5", text.toString());
+        assertTrue(result.get().wasDone());
+    }
+
+    public static class ScopeProbe extends Acteur {
+
+        @Inject
+        ScopeProbe(Long number, StringBuilder text) {
+            text.append(number);
+            setState(new State(true, true));
+        }
+    }
+
     private static class DemoModule extends AbstractModule {
 
         @Override
@@ -120,7 +158,7 @@ public class DemoTest {
             ReentrantScope scope = new ReentrantScope();
             bind(ReentrantScope.class).toInstance(scope);
             scope.bindTypes(binder(), UserPojo.class, String.class,
-                    StringBuilder.class, Templates.class, Integer.class);
+                    StringBuilder.class, Templates.class, Integer.class, Long.class);
         }
 
     }
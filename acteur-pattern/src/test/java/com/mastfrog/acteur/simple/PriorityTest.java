@@ -0,0 +1,209 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.simple;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mastfrog.acteur.simple.DemoTest.SubstituteName;
+import com.mastfrog.acteur.simple.DemoTest.SubstituteNumber;
+import com.mastfrog.acteur.simple.DemoTest.TemplateFinder;
+import com.mastfrog.acteur.simple.DemoTest.Templates;
+import com.mastfrog.acteur.simple.DemoTest.UserPojo;
+import com.mastfrog.acteurpattern.Chain;
+import com.mastfrog.acteurpattern.DeadlineScheduler;
+import com.mastfrog.acteurpattern.Priority;
+import com.mastfrog.acteurpattern.RunResult;
+import com.mastfrog.acteurpattern.ThreadedChainRunner;
+import com.mastfrog.acteurpattern.ThreadedChainRunner.Finisher;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Each test runs on a single thread which is kept busy until all events have
+ * been queued, so the order things finish in is deterministic.
+ *
+ * @author Tim Boudreau
+ */
+public class PriorityTest {
+
+    private final UserPojo user = new UserPojo("Joe");
+    private final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+    private final List<CountDownLatch> latches = new ArrayList<>();
+    private final Finisher<StringBuilder> finisher = new Finisher<StringBuilder>() {
+
+        @Override
+        public void onDone(StringBuilder obj, RunResult res) {
+            // Asserting here would only kill a pool thread, so record it
+            finished.add(res.wasDone() ? obj.toString() : "not done: " + obj);
+        }
+    };
+    private Injector inj;
+    private ReentrantScope scope;
+    private ExecutorService svc;
+    private CountDownLatch blocker;
+
+    @Before
+    public void setUp() {
+        inj = Guice.createInjector(new PriorityModule());
+        scope = inj.getInstance(ReentrantScope.class);
+        svc = Executors.newSingleThreadExecutor();
+        // Keep the pool busy until all events are queued
+        blocker = new CountDownLatch(1);
+        svc.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        blocker.countDown();
+        svc.shutdown();
+    }
+
+    private Chain chain() {
+        return new Chain(inj, TemplateFinder.class, SubstituteName.class, SubstituteNumber.class);
+    }
+
+    private void release() throws InterruptedException {
+        blocker.countDown();
+        for (CountDownLatch latch : latches) {
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+        }
+        assertEquals(latches.size(), finished.size());
+    }
+
+    private static String bulk(int number) {
+        return "Hello, Joe!\nYou have won " + number + " puppies";
+    }
+
+    private static String interactive(int number) {
+        return "So, Joe!\nMaybe you'd like " + number + " kittens?";
+    }
+
+    @Test
+    public void testInteractiveEventsOvertakeBulk() throws InterruptedException {
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain(), scope, svc, true);
+        for (int i = 0; i < 5; i++) {
+            latches.add(runner.onEvent(new StringBuilder(), Priority.BULK, finisher, "ONE", user, i));
+        }
+        latches.add(runner.onEvent(new StringBuilder(), Priority.INTERACTIVE, finisher, "THREE", user, 23));
+        release();
+        // Every hop of the interactive event runs ahead of the bulk ones
+        assertEquals(interactive(23), finished.get(0));
+        // Bulk events with the same priority are still run in deadline order
+        for (int i = 0; i < 5; i++) {
+            assertEquals(bulk(i), finished.get(i + 1));
+        }
+    }
+
+    @Test
+    public void testInteractiveEventsDoNotWaitForBulkBacklog() throws InterruptedException {
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain(), scope, svc, true);
+        int bulkCount = 1000;
+        for (int i = 0; i < bulkCount; i++) {
+            latches.add(runner.onEvent(new StringBuilder(), Priority.BULK, finisher, "ONE", user, i));
+        }
+        for (int i = 0; i < 5; i++) {
+            latches.add(runner.onEvent(new StringBuilder(), Priority.INTERACTIVE, finisher, "THREE", user, i));
+        }
+        release();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(interactive(i), finished.get(i));
+        }
+        for (int i = 0; i < bulkCount; i++) {
+            assertEquals(bulk(i), finished.get(i + 5));
+        }
+    }
+
+    @Test
+    public void testEventsPastTheirDeadlineAreNotStarved() throws InterruptedException {
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain(), scope, svc, true);
+        latches.add(runner.onEvent(new StringBuilder(), 5, TimeUnit.MILLISECONDS, finisher, "ONE", user, 1));
+        // Wait until the first event's deadline has passed
+        Thread.sleep(20);
+        latches.add(runner.onEvent(new StringBuilder(), Priority.INTERACTIVE, finisher, "THREE", user, 2));
+        release();
+        assertEquals(bulk(1), finished.get(0));
+        assertEquals(interactive(2), finished.get(1));
+    }
+
+    @Test
+    public void testRunnersSharingASchedulerAreOrderedTogether() throws InterruptedException {
+        DeadlineScheduler scheduler = new DeadlineScheduler(svc);
+        ThreadedChainRunner<StringBuilder> bulkRunner = new ThreadedChainRunner<>(chain(), scope, scheduler);
+        ThreadedChainRunner<StringBuilder> interactiveRunner = new ThreadedChainRunner<>(chain(), scope, scheduler);
+        for (int i = 0; i < 5; i++) {
+            latches.add(bulkRunner.onEvent(new StringBuilder(), Priority.BULK, finisher, "ONE", user, i));
+        }
+        latches.add(interactiveRunner.onEvent(new StringBuilder(), Priority.INTERACTIVE, finisher, "THREE", user, 23));
+        release();
+        assertEquals(interactive(23), finished.get(0));
+    }
+
+    @Test
+    public void testHugeDeadlineDoesNotOverflow() throws InterruptedException {
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain(), scope, svc, true);
+        latches.add(runner.onEvent(new StringBuilder(), Long.MAX_VALUE, TimeUnit.DAYS, finisher, "ONE", user, 1));
+        latches.add(runner.onEvent(new StringBuilder(), Priority.BULK, finisher, "ONE", user, 2));
+        release();
+        assertEquals(bulk(2), finished.get(0));
+        assertEquals(bulk(1), finished.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDeadlineIsRejected() {
+        ThreadedChainRunner<StringBuilder> runner = new ThreadedChainRunner<>(chain(), scope, svc, true);
+        runner.onEvent(new StringBuilder(), -1, TimeUnit.MILLISECONDS, finisher, "ONE", user, 1);
+    }
+
+    private static class PriorityModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            ReentrantScope scope = new ReentrantScope();
+            bind(ReentrantScope.class).toInstance(scope);
+            scope.bindTypes(binder(), UserPojo.class, String.class,
+                    StringBuilder.class, Templates.class, Integer.class);
+        }
+    }
+}
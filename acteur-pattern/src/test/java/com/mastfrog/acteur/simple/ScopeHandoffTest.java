@@ -0,0 +1,169 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.simple;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.mastfrog.acteurpattern.Acteur;
+import com.mastfrog.acteurpattern.Chain;
+import com.mastfrog.acteurpattern.ChainScope;
+import com.mastfrog.acteurpattern.RunResult;
+import com.mastfrog.acteurpattern.State;
+import com.mastfrog.acteurpattern.ThreadedChainRunner;
+import com.mastfrog.acteurpattern.ThreadedChainRunner.Finisher;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Measures the time from one Acteur's constructor to the next's - submitting
+ * the next Acteur, picking it up on a worker and handing it the event's
+ * context - after the event has accumulated different numbers of frames.
+ *
+ * @author Tim Boudreau
+ */
+public class ScopeHandoffTest {
+
+    private static final int[] FRAMES = {1, 10, 100};
+    private static final int PROBES = 20;
+    private static final int WARMUP = 50;
+    private static final int EVENTS = 200;
+
+    @Test
+    public void testHandoffCostDoesNotGrowWithContext() throws InterruptedException {
+        long[] frameBound = new long[FRAMES.length];
+        long[] scopeBound = new long[FRAMES.length];
+        for (int i = 0; i < FRAMES.length; i++) {
+            frameBound[i] = medianHopNanos(new FrameBoundModule(), FRAMES[i]);
+            scopeBound[i] = medianHopNanos(new ScopeBoundModule(), FRAMES[i]);
+            System.out.println("Hop with " + FRAMES[i] + " frames: "
+                    + frameBound[i] + "ns bound with ChainScope, "
+                    + scopeBound[i] + "ns bound in the scope");
+        }
+        long shallow = frameBound[0];
+        long deep = frameBound[FRAMES.length - 1];
+        assertTrue("Hop cost grew from " + shallow + "ns to " + deep + "ns",
+                deep <= shallow * 3 + TimeUnit.MICROSECONDS.toNanos(50));
+    }
+
+    private long medianHopNanos(Module module, int frames) throws InterruptedException {
+        Injector inj = Guice.createInjector(module);
+        ReentrantScope scope = inj.getInstance(ReentrantScope.class);
+        // The event object is the first frame, and each Push adds one
+        Class<?>[] types = new Class<?>[frames - 1 + PROBES + 1];
+        for (int i = 0; i < types.length - 1; i++) {
+            types[i] = i < frames - 1 ? Push.class : Probe.class;
+        }
+        types[types.length - 1] = Finish.class;
+        ExecutorService svc = Executors.newSingleThreadExecutor();
+        ThreadedChainRunner<Timings> runner = new ThreadedChainRunner<>(new Chain(inj, types), scope, svc);
+        Finisher<Timings> finisher = new Finisher<Timings>() {
+
+            @Override
+            public void onDone(Timings obj, RunResult res) {
+                // do nothing
+            }
+        };
+        long[] hops = new long[EVENTS];
+        for (int i = 0; i < WARMUP + EVENTS; i++) {
+            Timings timings = new Timings();
+            assertTrue(runner.onEvent(timings, finisher).await(10, TimeUnit.SECONDS));
+            if (i >= WARMUP) {
+                hops[i - WARMUP] = timings.averageHop();
+            }
+        }
+        svc.shutdown();
+        Arrays.sort(hops);
+        return hops[hops.length / 2];
+    }
+
+    static final class Timings {
+
+        private final long[] times = new long[PROBES];
+        private int count;
+
+        void hop() {
+            times[count++] = System.nanoTime();
+        }
+
+        long averageHop() {
+            return (times[count - 1] - times[0]) / (count - 1);
+        }
+    }
+
+    static final class Marker {
+    }
+
+    static class Push extends Acteur {
+
+        @Inject
+        Push() {
+            setState(new State(false, false, new Marker()));
+        }
+    }
+
+    static class Probe extends Acteur {
+
+        @Inject
+        Probe(Timings timings) {
+            timings.hop();
+            setState(new State(false, false));
+        }
+    }
+
+    static class Finish extends Acteur {
+
+        @Inject
+        Finish() {
+            setState(new State(true, true));
+        }
+    }
+
+    private static class FrameBoundModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            ReentrantScope scope = new ReentrantScope();
+            bind(ReentrantScope.class).toInstance(scope);
+            ChainScope.bindTypes(binder(), scope, Timings.class, Marker.class);
+        }
+    }
+
+    private static class ScopeBoundModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            ReentrantScope scope = new ReentrantScope();
+            bind(ReentrantScope.class).toInstance(scope);
+            scope.bindTypes(binder(), Timings.class, Marker.class);
+        }
+    }
+}
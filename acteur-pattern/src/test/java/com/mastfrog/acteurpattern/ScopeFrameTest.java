@@ -0,0 +1,108 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2013 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurpattern;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mastfrog.guicy.scope.ReentrantScope;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import java.util.concurrent.Callable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ScopeFrameTest {
+
+    @Test
+    public void testFramesShareStructure() {
+        ScopeFrame root = ScopeFrame.root(null, "a");
+        ScopeFrame one = root.push(1, 2);
+        ScopeFrame two = one.push(3L);
+        assertSame(root, one.parent());
+        assertSame(one, two.parent());
+        assertSame(two, two.push());
+        assertEquals(1, root.depth());
+        assertEquals(2, one.depth());
+        assertEquals(3, two.depth());
+        // Pushing did not alter earlier frames
+        assertArrayEquals(new Object[]{3L}, two.contents());
+        assertArrayEquals(new Object[]{1, 2}, one.contents());
+        assertArrayEquals(new Object[]{"a"}, root.contents());
+    }
+
+    @Test
+    public void testLaterFramesWin() {
+        final ReentrantScope scope = new ReentrantScope();
+        Injector inj = Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                scope.bindTypes(binder(), String.class, Integer.class);
+            }
+        });
+        ScopeFrame frame = ScopeFrame.root(null, "a", 1).push("b").push("c");
+        assertFalse(scope.inScope());
+        try (QuietAutoCloseable ac = frame.parent().enter(scope)) {
+            assertEquals("b", inj.getInstance(String.class));
+            assertEquals(Integer.valueOf(1), inj.getInstance(Integer.class));
+        }
+        assertFalse(scope.inScope());
+        try (QuietAutoCloseable ac = frame.enter(scope)) {
+            assertEquals("c", inj.getInstance(String.class));
+        }
+        assertFalse(scope.inScope());
+    }
+
+    @Test
+    public void testCurrentFrameIsLookedUpLazily() throws Exception {
+        final ReentrantScope scope = new ReentrantScope();
+        final Injector inj = Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                ChainScope.bindTypes(binder(), scope, String.class, Integer.class);
+            }
+        });
+        final ScopeFrame frame = ScopeFrame.root(null, "a", 1).push("b").push("c");
+        assertNull(ScopeFrame.current());
+        String found = frame.call(scope, false, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                assertSame(frame, ScopeFrame.current());
+                assertEquals(Integer.valueOf(1), inj.getInstance(Integer.class));
+                return inj.getInstance(String.class);
+            }
+        });
+        assertEquals("c", found);
+        assertNull(ScopeFrame.current());
+        // Outside of a frame, types bound with ChainScope come from the scope
+        try (QuietAutoCloseable ac = scope.enter("d")) {
+            assertEquals("d", inj.getInstance(String.class));
+        }
+    }
+}